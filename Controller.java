@@ -278,7 +278,10 @@ public class TimetableController {
                 data.get("group_id"),
                 data.get("room_id"),
                 data.get("lecturer_id"),
-                timeSlot
+                timeSlot,
+                dataManager.getActiveTerm(),
+                TimetableEntry.FIRST_WEEK,
+                TimetableEntry.LAST_WEEK
             );
             
             DataManager.ValidationResult result = dataManager.addTimetableEntry(entry);
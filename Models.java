@@ -1,7 +1,22 @@
 package ie.ul.timetable.models;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 class User {
     private String userId;
@@ -140,6 +155,74 @@ class Subgroup {
     public int getSize() { return size; }
 }
 
+/**
+ * Student group hierarchy resolved once at load time. Each programme year
+ * (e.g. "CS_Y1") maps to a group set: a BitSet over EntryStore group ids that
+ * holds its groups and, transitively, every subgroup beneath them.
+ */
+class GroupIndex {
+    private static final BitSet EMPTY = new BitSet();
+
+    private final Map<String, Integer> groupSetIds = new HashMap<>();
+    private final List<BitSet> groupSets = new ArrayList<>();
+
+    public GroupIndex(Collection<StudentGroup> groups, Collection<Subgroup> subgroups) {
+        IdPool pool = EntryStore.GROUPS;
+
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        for (Subgroup subgroup : subgroups) {
+            children.computeIfAbsent(pool.intern(subgroup.getParentGroupId()), k -> new ArrayList<>())
+                .add(pool.intern(subgroup.getSubgroupId()));
+        }
+
+        for (StudentGroup group : groups) {
+            String key = programmeYearKey(group.getProgrammeCode(), group.getYear());
+            Integer setId = groupSetIds.get(key);
+            if (setId == null) {
+                setId = groupSets.size();
+                groupSets.add(new BitSet());
+                groupSetIds.put(key, setId);
+            }
+            addWithDescendants(groupSets.get(setId), pool.intern(group.getGroupId()), children);
+        }
+    }
+
+    // Marks a group and all of its descendants; already-marked groups are skipped so cycles terminate
+    private static void addWithDescendants(BitSet set, int groupRef, Map<Integer, List<Integer>> children) {
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(groupRef);
+        while (!pending.isEmpty()) {
+            int ref = pending.pop();
+            if (set.get(ref)) {
+                continue;
+            }
+            set.set(ref);
+            for (int child : children.getOrDefault(ref, new ArrayList<>())) {
+                pending.push(child);
+            }
+        }
+    }
+
+    public static String programmeYearKey(String programmeCode, int year) {
+        return programmeCode + "_Y" + year;
+    }
+
+    // Returns the group set id for a programme year such as a student's programmeYear, or -1
+    public int groupSetId(String programmeYear) {
+        Integer setId = programmeYear == null ? null : groupSetIds.get(programmeYear);
+        return setId == null ? -1 : setId;
+    }
+
+    // The returned set is shared and must not be modified
+    public BitSet groupSet(int groupSetId) {
+        return groupSetId < 0 ? EMPTY : groupSets.get(groupSetId);
+    }
+
+    public BitSet groupSet(String programmeCode, int year) {
+        return groupSet(groupSetId(programmeYearKey(programmeCode, year)));
+    }
+}
+
 class TimeSlot {
     private String day;
     private String startTime;
@@ -161,43 +244,503 @@ class TimeSlot {
     }
 }
 
+/**
+ * An academic year and a semester within it. The academic year is identified by the
+ * calendar year it starts in, so 2026 is 2026/27.
+ */
+class Term implements Comparable<Term> {
+    static final int MAX_SEMESTER = 0xF;
+
+    private final int academicYear;
+    private final int semester;
+
+    public Term(int academicYear, int semester) {
+        if (academicYear < 1000 || academicYear > 9999) {
+            throw new IllegalArgumentException("Invalid academic year: " + academicYear);
+        }
+        if (semester < 1 || semester > MAX_SEMESTER) {
+            throw new IllegalArgumentException("Invalid semester: " + semester);
+        }
+        this.academicYear = academicYear;
+        this.semester = semester;
+    }
+
+    // The term in progress today: the academic year starts in September and semester 2 in February
+    public static Term current() {
+        LocalDate today = LocalDate.now();
+        int month = today.getMonthValue();
+        int academicYear = month >= 9 ? today.getYear() : today.getYear() - 1;
+        return new Term(academicYear, month >= 9 || month == 1 ? 1 : 2);
+    }
+
+    public int getAcademicYear() { return academicYear; }
+    public int getSemester() { return semester; }
+
+    // Identifies the term in file names, e.g. "2026_s1"
+    public String getKey() { return academicYear + "_s" + semester; }
+
+    int pack() { return (academicYear << 4) | semester; }
+    static Term unpack(int packed) { return new Term(packed >>> 4, packed & MAX_SEMESTER); }
+
+    @Override
+    public int compareTo(Term other) {
+        return Integer.compare(pack(), other.pack());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Term && ((Term) other).pack() == pack();
+    }
+
+    @Override
+    public int hashCode() { return pack(); }
+
+    @Override
+    public String toString() {
+        int next = (academicYear + 1) % 100;
+        return academicYear + "/" + (next < 10 ? "0" : "") + next + " semester " + semester;
+    }
+}
+
+/**
+ * Interns identifier strings to dense integer ids, so every distinct room,
+ * lecturer, module, group or day is held once however many entries use it.
+ */
+class IdPool {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private volatile String[] values = new String[16];
+    private int size;
+
+    public synchronized int intern(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        ids.put(value, size);
+        return size++;
+    }
+
+    // Returns the id of an already interned value, or -1 if it has never been seen
+    public synchronized int lookup(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    public String get(int id) { return values[id]; }
+    public synchronized int size() { return size; }
+}
+
+/**
+ * Column store for the timetable entries of one partition. Each entry is one row across
+ * a set of parallel primitive arrays: interned ids for module, group, room and lecturer,
+ * the session type ordinal, the day/start/end packed into a single int, the packed term,
+ * and the teaching week range packed into a single int.
+ * Rows are append-only and never change once written, so a TimetableEntry can be
+ * shared freely between threads and collections. The arrays are published together
+ * through a volatile holder that is only swapped once a grow has copied them.
+ * The id pools are shared by every store, so interned ids compare across partitions.
+ */
+class EntryStore {
+    static final IdPool MODULES = new IdPool();
+    static final IdPool GROUPS = new IdPool();
+    static final IdPool ROOMS = new IdPool();
+    static final IdPool LECTURERS = new IdPool();
+    static final IdPool DAYS = new IdPool();
+
+    private static final Enums.SessionType[] SESSION_TYPES = Enums.SessionType.values();
+
+    // Packed time layout: day id in the top bits, then start and end minutes (11 bits each)
+    private static final int MINUTE_BITS = 11;
+    private static final int MINUTE_MASK = (1 << MINUTE_BITS) - 1;
+
+    // Packed week layout: first week in the high byte, last week in the low byte
+    static final int MAX_WEEK = 0xFF;
+
+    // Flyweight TimeSlot objects, one per distinct packed time
+    private static final Map<Integer, TimeSlot> TIME_SLOTS = new ConcurrentHashMap<>();
+
+    private static final class Columns {
+        final String[] entryIds;
+        final int[] moduleRefs;
+        final int[] groupRefs;
+        final int[] roomRefs;
+        final int[] lecturerRefs;
+        final byte[] sessionTypes;
+        final int[] times;
+        final int[] terms;
+        final int[] weeks;
+
+        Columns(int capacity) {
+            this(new String[capacity], new int[capacity], new int[capacity], new int[capacity],
+                new int[capacity], new byte[capacity], new int[capacity], new int[capacity], new int[capacity]);
+        }
+
+        private Columns(String[] entryIds, int[] moduleRefs, int[] groupRefs, int[] roomRefs, int[] lecturerRefs,
+                        byte[] sessionTypes, int[] times, int[] terms, int[] weeks) {
+            this.entryIds = entryIds;
+            this.moduleRefs = moduleRefs;
+            this.groupRefs = groupRefs;
+            this.roomRefs = roomRefs;
+            this.lecturerRefs = lecturerRefs;
+            this.sessionTypes = sessionTypes;
+            this.times = times;
+            this.terms = terms;
+            this.weeks = weeks;
+        }
+
+        Columns copyOf(int capacity) {
+            return new Columns(Arrays.copyOf(entryIds, capacity), Arrays.copyOf(moduleRefs, capacity),
+                Arrays.copyOf(groupRefs, capacity), Arrays.copyOf(roomRefs, capacity),
+                Arrays.copyOf(lecturerRefs, capacity), Arrays.copyOf(sessionTypes, capacity),
+                Arrays.copyOf(times, capacity), Arrays.copyOf(terms, capacity), Arrays.copyOf(weeks, capacity));
+        }
+    }
+
+    private volatile Columns columns;
+    private int size; // guarded by this
+
+    public EntryStore(int capacity) {
+        columns = new Columns(Math.max(capacity, 1));
+    }
+
+    /**
+     * Writes a new row and returns its index.
+     * The day is stored by its standard name, so "friday" and "Friday" are the same day.
+     * Throws IllegalArgumentException if the day is not a day of the week, if a start or
+     * end time is not a valid HH:MM time, or if the week range is invalid.
+     */
+    public synchronized int append(String entryId, String moduleCode, Enums.SessionType sessionType,
+                                   String groupId, String roomId, String lecturerId, TimeSlot timeSlot,
+                                   Term term, int firstWeek, int lastWeek) {
+        int start = parseMinutes(timeSlot.getStartTime());
+        int end = parseMinutes(timeSlot.getEndTime());
+        if (firstWeek < 1 || lastWeek < firstWeek || lastWeek > MAX_WEEK) {
+            throw new IllegalArgumentException("Invalid week range: " + firstWeek + "-" + lastWeek);
+        }
+        String dayName = standardDay(timeSlot.getDay());
+        if (dayName == null) {
+            throw new IllegalArgumentException("Invalid day: " + timeSlot.getDay());
+        }
+        int day = DAYS.intern(dayName);
+        return writeRow(entryId, MODULES.intern(moduleCode), GROUPS.intern(groupId), ROOMS.intern(roomId),
+            LECTURERS.intern(lecturerId), (byte) sessionType.ordinal(),
+            (day << (2 * MINUTE_BITS)) | (start << MINUTE_BITS) | end, term.pack(), (firstWeek << 8) | lastWeek);
+    }
+
+    /**
+     * Copies a row of another store into this one and returns its index here.
+     */
+    public synchronized int appendCopy(EntryStore source, int row) {
+        Columns c = source.columns;
+        return writeRow(c.entryIds[row], c.moduleRefs[row], c.groupRefs[row], c.roomRefs[row],
+            c.lecturerRefs[row], c.sessionTypes[row], c.times[row], c.terms[row], c.weeks[row]);
+    }
+
+    // Caller holds the lock. The volatile write of columns comes last, so a reader
+    // that sees the new holder also sees the row just written.
+    private int writeRow(String entryId, int moduleRef, int groupRef, int roomRef, int lecturerRef,
+                         byte sessionType, int time, int term, int weeks) {
+        Columns c = columns;
+        if (size == c.entryIds.length) {
+            c = c.copyOf(Math.max(size * 2, 16));
+        }
+        int row = size;
+        c.entryIds[row] = entryId;
+        c.moduleRefs[row] = moduleRef;
+        c.groupRefs[row] = groupRef;
+        c.roomRefs[row] = roomRef;
+        c.lecturerRefs[row] = lecturerRef;
+        c.sessionTypes[row] = sessionType;
+        c.times[row] = time;
+        c.terms[row] = term;
+        c.weeks[row] = weeks;
+        columns = c;
+        size++;
+        return row;
+    }
+
+    public String entryId(int row) { return columns.entryIds[row]; }
+    public int moduleRef(int row) { return columns.moduleRefs[row]; }
+    public int groupRef(int row) { return columns.groupRefs[row]; }
+    public int roomRef(int row) { return columns.roomRefs[row]; }
+    public int lecturerRef(int row) { return columns.lecturerRefs[row]; }
+    public Enums.SessionType sessionType(int row) { return SESSION_TYPES[columns.sessionTypes[row]]; }
+    public int time(int row) { return columns.times[row]; }
+    public int term(int row) { return columns.terms[row]; }
+    public int weeks(int row) { return columns.weeks[row]; }
+
+    public TimeSlot timeSlot(int row) {
+        return TIME_SLOTS.computeIfAbsent(time(row), t ->
+            new TimeSlot(DAYS.get(dayOf(t)), formatMinutes(startOf(t)), formatMinutes(endOf(t))));
+    }
+
+    public synchronized int size() { return size; }
+
+    static int dayOf(int time) { return time >>> (2 * MINUTE_BITS); }
+    static int startOf(int time) { return (time >>> MINUTE_BITS) & MINUTE_MASK; }
+    static int endOf(int time) { return time & MINUTE_MASK; }
+    static int firstWeekOf(int weeks) { return weeks >>> 8; }
+    static int lastWeekOf(int weeks) { return weeks & MAX_WEEK; }
+
+    // Converts a day name in any case, e.g. " friday", to "Friday"; null if it is not a day of the week
+    static String standardDay(String day) {
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            if (dayOfWeek.name().equalsIgnoreCase(day.trim())) {
+                return dayOfWeek.getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+            }
+        }
+        return null;
+    }
+
+    // Converts "HH:MM" from 00:00 to 23:59 into minutes since midnight
+    static int parseMinutes(String time) {
+        int colon = time.indexOf(':');
+        try {
+            int hours = Integer.parseInt(time.substring(0, colon).trim());
+            int minutes = Integer.parseInt(time.substring(colon + 1).trim());
+            if (hours >= 0 && hours < 24 && minutes >= 0 && minutes < 60) {
+                return hours * 60 + minutes;
+            }
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid time: " + time);
+    }
+
+    static String formatMinutes(int minutes) {
+        int hours = minutes / 60;
+        int mins = minutes % 60;
+        return (hours < 10 ? "0" : "") + hours + ":" + (mins < 10 ? "0" : "") + mins;
+    }
+}
+
+/**
+ * A timetable entry is a lightweight view over one row of an EntryStore.
+ * It repeats weekly on its day and time from firstWeek to lastWeek of its term.
+ * The term is always given by the caller, usually DataManager.getActiveTerm().
+ * An entry built with a public constructor has a one-row store of its own; adding it
+ * to the timetable copies it into the partition's store, so entries that are never
+ * added (rejected or discarded ones) are garbage collected with their store.
+ */
 class TimetableEntry {
-    private String entryId;
-    private String moduleCode;
-    private Enums.SessionType sessionType;
-    private String groupId;
-    private String roomId;
-    private String lecturerId;
-    private TimeSlot timeSlot;
+    public static final int FIRST_WEEK = 1;
+    public static final int LAST_WEEK = 12;
+
+    private final EntryStore store;
+    private final int row;
 
     public TimetableEntry(String entryId, String moduleCode, Enums.SessionType sessionType,
-                          String groupId, String roomId, String lecturerId, TimeSlot timeSlot) {
-        this.entryId = entryId;
-        this.moduleCode = moduleCode;
-        this.sessionType = sessionType;
-        this.groupId = groupId;
-        this.roomId = roomId;
-        this.lecturerId = lecturerId;
-        this.timeSlot = timeSlot;
+                          String groupId, String roomId, String lecturerId, TimeSlot timeSlot,
+                          Term term, int firstWeek, int lastWeek) {
+        this(new EntryStore(1), entryId, moduleCode, sessionType, groupId, roomId, lecturerId, timeSlot,
+            term, firstWeek, lastWeek);
     }
 
-    public String getEntryId() { return entryId; }
-    public String getModuleCode() { return moduleCode; }
-    public Enums.SessionType getSessionType() { return sessionType; }
-    public String getGroupId() { return groupId; }
-    public String getRoomId() { return roomId; }
-    public String getLecturerId() { return lecturerId; }
-    public TimeSlot getTimeSlot() { return timeSlot; }
+    // Appends a new row to the given store
+    TimetableEntry(EntryStore store, String entryId, String moduleCode, Enums.SessionType sessionType,
+                   String groupId, String roomId, String lecturerId, TimeSlot timeSlot,
+                   Term term, int firstWeek, int lastWeek) {
+        this(store, store.append(entryId, moduleCode, sessionType,
+            groupId, roomId, lecturerId, timeSlot, term, firstWeek, lastWeek));
+    }
+
+    private TimetableEntry(EntryStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    // Returns a view of a copy of this entry in another store
+    TimetableEntry copyTo(EntryStore target) {
+        return new TimetableEntry(target, target.appendCopy(store, row));
+    }
+
+    public String getEntryId() { return store.entryId(row); }
+    public String getModuleCode() { return EntryStore.MODULES.get(store.moduleRef(row)); }
+    public Enums.SessionType getSessionType() { return store.sessionType(row); }
+    public String getGroupId() { return EntryStore.GROUPS.get(store.groupRef(row)); }
+    public String getRoomId() { return EntryStore.ROOMS.get(store.roomRef(row)); }
+    public String getLecturerId() { return EntryStore.LECTURERS.get(store.lecturerRef(row)); }
+    public TimeSlot getTimeSlot() { return store.timeSlot(row); }
+
+    public int getStartMinutes() { return EntryStore.startOf(store.time(row)); }
+    public int getEndMinutes() { return EntryStore.endOf(store.time(row)); }
+    public int getDurationMinutes() { return getEndMinutes() - getStartMinutes(); }
+
+    public Term getTerm() { return Term.unpack(store.term(row)); }
+    public int getAcademicYear() { return getTerm().getAcademicYear(); }
+    public int getSemester() { return getTerm().getSemester(); }
+    public int getFirstWeek() { return EntryStore.firstWeekOf(store.weeks(row)); }
+    public int getLastWeek() { return EntryStore.lastWeekOf(store.weeks(row)); }
+
+    // Interned ids, for scans that compare many entries against the same key
+    int moduleRef() { return store.moduleRef(row); }
+    int groupRef() { return store.groupRef(row); }
+    int roomRef() { return store.roomRef(row); }
+    int lecturerRef() { return store.lecturerRef(row); }
+    int dayRef() { return EntryStore.dayOf(store.time(row)); }
+    int termRef() { return store.term(row); }
+
+    // True if both entries hold the same values in every field
+    boolean sameAs(TimetableEntry other) {
+        if (this == other) {
+            return true;
+        }
+        return getEntryId().equals(other.getEntryId())
+            && moduleRef() == other.moduleRef()
+            && groupRef() == other.groupRef()
+            && roomRef() == other.roomRef()
+            && lecturerRef() == other.lecturerRef()
+            && getSessionType() == other.getSessionType()
+            && store.time(row) == other.store.time(other.row)
+            && store.term(row) == other.store.term(other.row)
+            && store.weeks(row) == other.store.weeks(other.row);
+    }
 
     public boolean conflictsWith(TimetableEntry other) {
-        if (!this.timeSlot.getDay().equals(other.timeSlot.getDay())) {
+        if (this.store.term(this.row) != other.store.term(other.row)) {
             return false;
         }
-        String s1 = this.timeSlot.getStartTime();
-        String e1 = this.timeSlot.getEndTime();
-        String s2 = other.timeSlot.getStartTime();
-        String e2 = other.timeSlot.getEndTime();
+        int w1 = this.store.weeks(this.row);
+        int w2 = other.store.weeks(other.row);
+        if (EntryStore.firstWeekOf(w1) > EntryStore.lastWeekOf(w2)
+                || EntryStore.firstWeekOf(w2) > EntryStore.lastWeekOf(w1)) {
+            return false;
+        }
+        int t1 = this.store.time(this.row);
+        int t2 = other.store.time(other.row);
+        if (EntryStore.dayOf(t1) != EntryStore.dayOf(t2)) {
+            return false;
+        }
+        return EntryStore.startOf(t1) < EntryStore.endOf(t2)
+            && EntryStore.startOf(t2) < EntryStore.endOf(t1);
+    }
+}
+
+/**
+ * One term's published timetable: an unmodifiable list of entries whose rows live in
+ * the partition's own EntryStore. A change builds a new partition that appends to the same
+ * store, so older partitions (such as a sandbox's base) stay valid. Once dead rows outnumber
+ * live ones the survivors are compacted into a fresh store, and the old store is reclaimed
+ * when nothing refers to it any more.
+ */
+class TimetablePartition {
+    private static final int COMPACT_SLACK = 64;
+
+    private final EntryStore store;
+    private final List<TimetableEntry> entries;
+    private final Map<String, TimetableEntry> byId;
+
+    // The entries must all be rows of the given store
+    TimetablePartition(EntryStore store, List<TimetableEntry> entries) {
+        this.store = store;
+        this.entries = Collections.unmodifiableList(entries);
+        this.byId = new HashMap<>(entries.size() * 2);
+        for (TimetableEntry entry : entries) {
+            byId.put(entry.getEntryId(), entry);
+        }
+    }
+
+    static TimetablePartition empty() {
+        return new TimetablePartition(new EntryStore(COMPACT_SLACK), new ArrayList<>());
+    }
+
+    public List<TimetableEntry> getEntries() { return entries; }
+
+    // Returns the entry with the given ID, or null
+    public TimetableEntry get(String entryId) { return byId.get(entryId); }
+    public boolean contains(String entryId) { return byId.containsKey(entryId); }
+
+    /**
+     * Returns a new partition without the entries whose IDs are in removedIds, and with the
+     * additions copied in, each replacing any existing entry with the same ID.
+     * Must not be called concurrently for partitions that share a store.
+     */
+    TimetablePartition with(Collection<TimetableEntry> additions, Set<String> removedIds) {
+        Set<String> replacedIds = new HashSet<>();
+        for (TimetableEntry entry : additions) {
+            replacedIds.add(entry.getEntryId());
+        }
+        List<TimetableEntry> updated = new ArrayList<>(entries.size() + additions.size());
+        for (TimetableEntry entry : entries) {
+            if (!removedIds.contains(entry.getEntryId()) && !replacedIds.contains(entry.getEntryId())) {
+                updated.add(entry);
+            }
+        }
+
+        EntryStore target = store;
+        int live = updated.size() + additions.size();
+        if (store.size() + additions.size() > 2 * live + COMPACT_SLACK) {
+            target = new EntryStore(live + COMPACT_SLACK);
+            for (int i = 0; i < updated.size(); i++) {
+                updated.set(i, updated.get(i).copyTo(target));
+            }
+        }
+        for (TimetableEntry entry : additions) {
+            updated.add(entry.copyTo(target));
+        }
+        return new TimetablePartition(target, updated);
+    }
+}
+
+/**
+ * Buckets entries by term, day and resource (room, lecturer or group), so a new
+ * entry is only compared with entries that share one of its resources on the same day.
+ */
+class ConflictIndex {
+    private static final int ROOM = 0;
+    private static final int LECTURER = 1;
+    private static final int GROUP = 2;
+
+    private final Map<Long, List<TimetableEntry>> buckets = new HashMap<>();
+    private final Set<String> entryIds = new HashSet<>();
+
+    public void add(TimetableEntry entry) {
+        entryIds.add(entry.getEntryId());
+        bucket(key(entry, ROOM, entry.roomRef())).add(entry);
+        bucket(key(entry, LECTURER, entry.lecturerRef())).add(entry);
+        bucket(key(entry, GROUP, entry.groupRef())).add(entry);
+    }
+
+    public boolean containsEntryId(String entryId) {
+        return entryIds.contains(entryId);
+    }
+
+    // Same rules as DataManager.checkConflicts, naming the entry that is clashed with
+    public List<String> findConflicts(TimetableEntry entry) {
+        List<String> conflicts = new ArrayList<>();
+        for (TimetableEntry other : lookup(key(entry, ROOM, entry.roomRef()))) {
+            if (entry.conflictsWith(other)) {
+                conflicts.add("Room " + other.getRoomId() + " already booked by " + other.getEntryId());
+            }
+        }
+        for (TimetableEntry other : lookup(key(entry, LECTURER, entry.lecturerRef()))) {
+            if (entry.conflictsWith(other)) {
+                conflicts.add("Lecturer " + other.getLecturerId() + " already scheduled in " + other.getEntryId());
+            }
+        }
+        for (TimetableEntry other : lookup(key(entry, GROUP, entry.groupRef()))) {
+            if (entry.conflictsWith(other)) {
+                conflicts.add("Group " + other.getGroupId() + " already scheduled in " + other.getEntryId());
+            }
+        }
+        return conflicts;
+    }
+
+    private List<TimetableEntry> bucket(long key) {
+        return buckets.computeIfAbsent(key, k -> new ArrayList<>());
+    }
+
+    // Read-only lookup; checking an entry must not add empty buckets to the index
+    private List<TimetableEntry> lookup(long key) {
+        return buckets.getOrDefault(key, Collections.emptyList());
+    }
 
-        return s1.compareTo(e2) < 0 && s2.compareTo(e1) < 0;
+    // Key layout: packed term, day id (10 bits), resource kind (2 bits), interned resource id (30 bits)
+    private static long key(TimetableEntry entry, int kind, int ref) {
+        return ((long) entry.termRef() << 42) | ((long) entry.dayRef() << 32) | ((long) kind << 30) | ref;
     }
 }
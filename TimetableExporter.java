@@ -0,0 +1,352 @@
+// Export layer - streams personal timetables to .ics files and a bulk CSV/JSON feed for other campus systems
+package ie.ul.timetable.services;
+
+import ie.ul.timetable.models.*;
+import ie.ul.timetable.models.Enums.*;
+import ie.ul.timetable.models.Module;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class TimetableExporter {
+    private static final String MANIFEST_FILE = "export_manifest.csv";
+    private static final String FEED_CSV_FILE = "timetable_feed.csv";
+    private static final String FEED_JSON_FILE = "timetable_feed.json";
+    private static final DateTimeFormatter ICS_LOCAL = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final DateTimeFormatter ICS_UTC = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    // Class times are local to the campus, so events carry a TZID and the calendar defines it
+    private static final String TIME_ZONE = "Europe/Dublin";
+    private static final String[] VTIMEZONE = {
+        "BEGIN:VTIMEZONE",
+        "TZID:" + TIME_ZONE,
+        "BEGIN:STANDARD",
+        "DTSTART:19701025T020000",
+        "RRULE:FREQ=YEARLY;BYMONTH=10;BYDAY=-1SU",
+        "TZOFFSETFROM:+0100",
+        "TZOFFSETTO:+0000",
+        "TZNAME:GMT",
+        "END:STANDARD",
+        "BEGIN:DAYLIGHT",
+        "DTSTART:19700329T010000",
+        "RRULE:FREQ=YEARLY;BYMONTH=3;BYDAY=-1SU",
+        "TZOFFSETFROM:+0000",
+        "TZOFFSETTO:+0100",
+        "TZNAME:IST",
+        "END:DAYLIGHT",
+        "END:VTIMEZONE"
+    };
+
+    // Receives rendered calendar lines, either to write them or to hash them
+    private interface LineSink {
+        void accept(String line) throws IOException;
+    }
+
+    private DataManager dataManager;
+    private Path exportDir;
+    private LocalDate semesterStart;
+
+    // Constructor - semesterStart is the Monday of week 1 of the active term
+    public TimetableExporter(DataManager dataManager, String exportDir, LocalDate semesterStart) {
+        this.dataManager = dataManager;
+        this.exportDir = Paths.get(exportDir);
+        this.semesterStart = semesterStart.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    // Exports every student and lecturer in parallel, skipping users whose calendar is unchanged
+    // since the last export, and deletes the calendars of users no longer exported.
+    // Returns the number of calendars written.
+    public int exportAll() throws IOException {
+        Files.createDirectories(exportDir.resolve("ics"));
+
+        Map<String, String> previous = loadManifest();
+        Map<String, String> current = new ConcurrentHashMap<>();
+        AtomicInteger written = new AtomicInteger();
+        List<User> targets = getExportTargets();
+        // Students in the same programme year share a timetable, so it is looked up once per group set
+        Map<Integer, List<TimetableEntry>> groupSetTimetables = new ConcurrentHashMap<>();
+
+        try {
+            targets.parallelStream().forEach(user -> {
+                try {
+                    List<TimetableEntry> entries = getTimetable(user, groupSetTimetables);
+                    String fingerprint = fingerprint(user, entries);
+                    current.put(user.getUserId(), fingerprint);
+
+                    Path file = calendarFile(user.getUserId());
+                    if (fingerprint.equals(previous.get(user.getUserId())) && Files.exists(file)) {
+                        return;
+                    }
+                    writeCalendar(user, entries, file);
+                    written.incrementAndGet();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        deleteStaleCalendars(current.keySet());
+
+        // Regenerate the bulk feeds only if some user changed or a user was removed
+        boolean feedMissing = !Files.exists(exportDir.resolve(FEED_CSV_FILE))
+            || !Files.exists(exportDir.resolve(FEED_JSON_FILE));
+        if (written.get() > 0 || feedMissing || !current.keySet().equals(previous.keySet())) {
+            writeFeeds(targets, groupSetTimetables);
+        }
+        saveManifest(current);
+
+        return written.get();
+    }
+
+    // Gets all students and lecturers, ordered by ID so the feeds are stable between runs
+    private List<User> getExportTargets() {
+        return dataManager.getUsers().values().stream()
+            .filter(u -> u.getRole() == UserRole.STUDENT || u.getRole() == UserRole.LECTURER)
+            .sorted(Comparator.comparing(User::getUserId))
+            .collect(Collectors.toList());
+    }
+
+    private List<TimetableEntry> getTimetable(User user, Map<Integer, List<TimetableEntry>> groupSetTimetables) {
+        if (user.getRole() == UserRole.STUDENT) {
+            int groupSetId = dataManager.getStudentGroupSetId(user.getUserId());
+            if (groupSetId < 0) {
+                return Collections.emptyList();
+            }
+            return groupSetTimetables.computeIfAbsent(groupSetId, dataManager::getGroupSetTimetable);
+        }
+        return dataManager.getLecturerTimetable(user.getUserId());
+    }
+
+    private Path calendarFile(String userId) {
+        return exportDir.resolve("ics").resolve(userId + ".ics");
+    }
+
+    // Removes calendars left behind by users who are no longer exported
+    private void deleteStaleCalendars(Set<String> userIds) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(exportDir.resolve("ics"), "*.ics")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!userIds.contains(name.substring(0, name.length() - ".ics".length()))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    // SHA-256 of the calendar exactly as it is rendered apart from DTSTAMP, plus the user's
+    // role from the feeds, so a change to any rendered field changes the fingerprint
+    private String fingerprint(User user, List<TimetableEntry> entries) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update((user.getRole().getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+        renderCalendar(user, entries, null, line -> digest.update((line + "\n").getBytes(StandardCharsets.UTF_8)));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    // Streams one user's calendar to a temporary file, then moves it into place
+    private void writeCalendar(User user, List<TimetableEntry> entries, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        String stamp = ZonedDateTime.now(ZoneOffset.UTC).format(ICS_UTC);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            renderCalendar(user, entries, stamp, line -> writeLine(writer, line));
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Renders a calendar line by line; the DTSTAMP line is left out when stamp is null
+    private void renderCalendar(User user, List<TimetableEntry> entries, String stamp, LineSink out) throws IOException {
+        out.accept("BEGIN:VCALENDAR");
+        out.accept("VERSION:2.0");
+        out.accept("PRODID:-//University of Limerick//Timetabling System//EN");
+        out.accept("X-WR-CALNAME:" + escapeText(user.getName()));
+        out.accept("X-WR-TIMEZONE:" + TIME_ZONE);
+        for (String line : VTIMEZONE) {
+            out.accept(line);
+        }
+
+        for (TimetableEntry entry : entries) {
+            LocalDate firstDate = firstOccurrence(entry);
+            if (firstDate == null) {
+                continue;
+            }
+            TimeSlot slot = entry.getTimeSlot();
+            LocalDateTime start = firstDate.atTime(LocalTime.parse(slot.getStartTime()));
+            LocalDateTime end = firstDate.atTime(LocalTime.parse(slot.getEndTime()));
+
+            out.accept("BEGIN:VEVENT");
+            out.accept("UID:" + entry.getEntryId() + "-" + entry.getTerm().getKey() + "@timetable.ul.ie");
+            if (stamp != null) {
+                out.accept("DTSTAMP:" + stamp);
+            }
+            out.accept("DTSTART;TZID=" + TIME_ZONE + ":" + start.format(ICS_LOCAL));
+            out.accept("DTEND;TZID=" + TIME_ZONE + ":" + end.format(ICS_LOCAL));
+            out.accept("RRULE:FREQ=WEEKLY;COUNT=" + (entry.getLastWeek() - entry.getFirstWeek() + 1));
+            out.accept("SUMMARY:" + escapeText(describe(entry)));
+            out.accept("LOCATION:" + escapeText(describeRoom(entry.getRoomId())));
+            out.accept("DESCRIPTION:" + escapeText("Group " + entry.getGroupId()
+                + ", Lecturer " + entry.getLecturerId()));
+            out.accept("END:VEVENT");
+        }
+
+        out.accept("END:VCALENDAR");
+    }
+
+    // Streams the bulk CSV and JSON feeds, one row per user per entry
+    private void writeFeeds(List<User> targets, Map<Integer, List<TimetableEntry>> groupSetTimetables) throws IOException {
+        Path csvFile = exportDir.resolve(FEED_CSV_FILE);
+        Path jsonFile = exportDir.resolve(FEED_JSON_FILE);
+        Path csvTmp = exportDir.resolve(FEED_CSV_FILE + ".tmp");
+        Path jsonTmp = exportDir.resolve(FEED_JSON_FILE + ".tmp");
+
+        try (BufferedWriter csv = Files.newBufferedWriter(csvTmp, StandardCharsets.UTF_8);
+             BufferedWriter json = Files.newBufferedWriter(jsonTmp, StandardCharsets.UTF_8)) {
+            csv.write("user_id,role,entry_id,module_code,session_type,group_id,room_id,lecturer_id,day,start_time,end_time,academic_year,semester,first_week,last_week");
+            csv.newLine();
+            json.write("[");
+
+            boolean first = true;
+            for (User user : targets) {
+                for (TimetableEntry entry : getTimetable(user, groupSetTimetables)) {
+                    TimeSlot slot = entry.getTimeSlot();
+                    csv.write(String.join(",", user.getUserId(), user.getRole().getValue(),
+                        entry.getEntryId(), entry.getModuleCode(), entry.getSessionType().getValue(),
+                        entry.getGroupId(), entry.getRoomId(), entry.getLecturerId(),
+                        slot.getDay(), slot.getStartTime(), slot.getEndTime(),
+                        String.valueOf(entry.getAcademicYear()), String.valueOf(entry.getSemester()),
+                        String.valueOf(entry.getFirstWeek()),
+                        String.valueOf(entry.getLastWeek())));
+                    csv.newLine();
+
+                    json.write(first ? "\n" : ",\n");
+                    first = false;
+                    json.write("{\"user_id\":" + jsonString(user.getUserId())
+                        + ",\"role\":" + jsonString(user.getRole().getValue())
+                        + ",\"entry_id\":" + jsonString(entry.getEntryId())
+                        + ",\"module_code\":" + jsonString(entry.getModuleCode())
+                        + ",\"session_type\":" + jsonString(entry.getSessionType().getValue())
+                        + ",\"group_id\":" + jsonString(entry.getGroupId())
+                        + ",\"room_id\":" + jsonString(entry.getRoomId())
+                        + ",\"lecturer_id\":" + jsonString(entry.getLecturerId())
+                        + ",\"day\":" + jsonString(slot.getDay())
+                        + ",\"start_time\":" + jsonString(slot.getStartTime())
+                        + ",\"end_time\":" + jsonString(slot.getEndTime())
+                        + ",\"academic_year\":" + entry.getAcademicYear()
+                        + ",\"semester\":" + entry.getSemester()
+                        + ",\"first_week\":" + entry.getFirstWeek()
+                        + ",\"last_week\":" + entry.getLastWeek() + "}");
+                }
+            }
+
+            json.write("\n]");
+            json.newLine();
+        }
+
+        Files.move(csvTmp, csvFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(jsonTmp, jsonFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads the fingerprints recorded by the previous export
+    private Map<String, String> loadManifest() throws IOException {
+        Map<String, String> manifest = new HashMap<>();
+        Path file = exportDir.resolve(MANIFEST_FILE);
+        if (!Files.exists(file)) {
+            return manifest;
+        }
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = br.readLine(); // Skip header
+            while ((line = br.readLine()) != null) {
+                String[] parts = line.split(",", -1);
+                if (parts.length >= 2) {
+                    manifest.put(parts[0], parts[1]);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private void saveManifest(Map<String, String> manifest) throws IOException {
+        Path file = exportDir.resolve(MANIFEST_FILE);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            writer.println("user_id,fingerprint");
+            for (Map.Entry<String, String> entry : new TreeMap<>(manifest).entrySet()) {
+                writer.println(entry.getKey() + "," + entry.getValue());
+            }
+        }
+    }
+
+    // Helper method - date of the first class in the entry's first week, or null for an unknown day
+    private LocalDate firstOccurrence(TimetableEntry entry) {
+        DayOfWeek day;
+        try {
+            day = DayOfWeek.valueOf(entry.getTimeSlot().getDay().trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return semesterStart.plusWeeks(entry.getFirstWeek() - 1)
+            .with(TemporalAdjusters.nextOrSame(day));
+    }
+
+    private String describe(TimetableEntry entry) {
+        Module module = dataManager.getModules().get(entry.getModuleCode());
+        String name = module != null ? " " + module.getName() : "";
+        return entry.getModuleCode() + name + " (" + entry.getSessionType().getValue() + ")";
+    }
+
+    private String describeRoom(String roomId) {
+        Room room = dataManager.getRooms().get(roomId);
+        return room != null ? roomId + " - " + room.getName() : roomId;
+    }
+
+    // iCalendar lines end in CRLF and are folded at 75 characters (RFC 5545)
+    private static void writeLine(Writer writer, String line) throws IOException {
+        int start = 0;
+        int limit = 75;
+        while (line.length() - start > limit) {
+            writer.write(line, start, limit);
+            writer.write("\r\n ");
+            start += limit;
+            limit = 74;
+        }
+        writer.write(line, start, line.length() - start);
+        writer.write("\r\n");
+    }
+
+    private static String escapeText(String text) {
+        return text.replace("\\", "\\\\").replace(";", "\\;").replace(",", "\\,").replace("\n", "\\n");
+    }
+
+    private static String jsonString(String text) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ A what-if overlay over one term of the timetable. The sandbox shares the
+ partition it was opened on and records only its own additions and removals,
+ so many admins can hold sandboxes at once without copying the dataset.
+ Changes are applied with commit() or dropped with discard().
+ */
+package ie.ul.timetable.models;
+
+import java.io.IOException;
+import java.util.*;
+
+public class TimetableSandbox implements TimetableSource {
+    private final DataManager dataManager;
+    private final Term term;
+    private final TimetablePartition base; // shared partition, never modified
+    
+    // Overlay: entries added or replaced in the sandbox, and base entries removed by it
+    private final Map<String, TimetableEntry> added = new LinkedHashMap<>();
+    private final Set<String> removed = new HashSet<>();
+    // Base entry each overridden ID was taken from (null for an ID the base did not have),
+    // so commit can tell whether someone else has changed it since
+    private final Map<String, TimetableEntry> baseVersions = new HashMap<>();
+    
+    private List<TimetableEntry> merged; // cached view, rebuilt after each change
+    private boolean closed;
+    
+    TimetableSandbox(DataManager dataManager, Term term, TimetablePartition base) {
+        this.dataManager = dataManager;
+        this.term = term;
+        this.base = base;
+    }
+    
+    /**
+     * Adds an entry to the sandbox, or replaces the entry with the same ID,
+     * after checking its fields and checking it against everything else in the sandbox.
+     * Use this with the original entry ID to try out moving a session.
+     */
+    public synchronized DataManager.ValidationResult putEntry(TimetableEntry entry) {
+        ensureOpen();
+        if (!entry.getTerm().equals(term)) {
+            return new DataManager.ValidationResult(false,
+                "Entry is for " + entry.getTerm() + " but sandbox is for " + term);
+        }
+        
+        String problem = dataManager.validateEntry(entry);
+        if (problem != null) {
+            return new DataManager.ValidationResult(false, problem);
+        }
+        
+        // Base entries the sandbox has overridden are skipped; the overlay holds their replacements
+        List<String> conflicts = dataManager.checkConflicts(entry, base.getEntries(), baseVersions.keySet());
+        conflicts.addAll(dataManager.checkConflicts(entry, added.values()));
+        if (!conflicts.isEmpty()) {
+            return new DataManager.ValidationResult(false, "Conflicts: " + String.join(", ", conflicts));
+        }
+        
+        String entryId = entry.getEntryId();
+        if (!baseVersions.containsKey(entryId)) {
+            baseVersions.put(entryId, base.get(entryId));
+        }
+        removed.remove(entryId);
+        added.put(entryId, entry);
+        merged = null;
+        return new DataManager.ValidationResult(true, "Entry staged in sandbox");
+    }
+    
+    /**
+     * Removes an entry from the sandbox by ID. Returns true if it was present.
+     */
+    public synchronized boolean removeEntry(String entryId) {
+        ensureOpen();
+        boolean wasAdded = added.remove(entryId) != null;
+        boolean hidden = base.contains(entryId) && removed.add(entryId);
+        if (hidden && !baseVersions.containsKey(entryId)) {
+            baseVersions.put(entryId, base.get(entryId));
+        } else if (wasAdded && !base.contains(entryId)) {
+            baseVersions.remove(entryId);
+        }
+        if (wasAdded || hidden) {
+            merged = null;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the base entries minus removals, followed by the sandbox's own entries.
+     */
+    @Override
+    public synchronized List<TimetableEntry> getTimetableEntries() {
+        if (merged == null) {
+            List<TimetableEntry> view = new ArrayList<>(base.getEntries().size() + added.size());
+            for (TimetableEntry entry : base.getEntries()) {
+                if (!baseVersions.containsKey(entry.getEntryId())) {
+                    view.add(entry);
+                }
+            }
+            view.addAll(added.values());
+            merged = Collections.unmodifiableList(view);
+        }
+        return merged;
+    }
+    
+    /**
+     * Applies the sandbox's changes to the live timetable in one step and closes it.
+     * If an entry the sandbox overrides has been changed elsewhere since the sandbox was
+     * opened, or the changes now clash with entries committed elsewhere, nothing is applied
+     * and the sandbox stays open.
+     */
+    public synchronized DataManager.ValidationResult commit() throws IOException {
+        ensureOpen();
+        DataManager.ValidationResult result = dataManager.commitSandbox(this);
+        if (result.isSuccess()) {
+            discard();
+        }
+        return result;
+    }
+    
+    /**
+     * Drops all changes and closes the sandbox.
+     */
+    public synchronized void discard() {
+        added.clear();
+        removed.clear();
+        baseVersions.clear();
+        merged = null;
+        closed = true;
+    }
+    
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Sandbox has been committed or discarded");
+        }
+    }
+    
+    public Term getTerm() { return term; }
+    public synchronized boolean hasChanges() { return !added.isEmpty() || !removed.isEmpty(); }
+    
+    // Overlay contents, read by DataManager when committing
+    Map<String, TimetableEntry> getAddedEntries() { return added; }
+    Set<String> getRemovedEntryIds() { return removed; }
+    Map<String, TimetableEntry> getBaseVersions() { return baseVersions; }
+    
+    @Override
+    public Map<String, User> getUsers() { return dataManager.getUsers(); }
+    @Override
+    public Map<String, Room> getRooms() { return dataManager.getRooms(); }
+    @Override
+    public Map<String, Module> getModules() { return dataManager.getModules(); }
+}
@@ -4,6 +4,7 @@ package ie.ul.timetable.services;
 import ie.ul.timetable.models.*;
 import ie.ul.timetable.models.Enums.*;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -77,6 +78,16 @@ public class TimetableService {
         return dataManager.removeTimetableEntry(entryId);
     }
     
+    // Imports many entries from CSV at once; with dryRun nothing is saved
+    public DataManager.ImportResult importEntries(Reader csv, boolean dryRun) throws IOException {
+        return dataManager.importTimetable(csv, dryRun);
+    }
+    
+    // Opens a what-if sandbox over the active term; run a ReportService on it to preview changes
+    public TimetableSandbox openSandbox() {
+        return dataManager.openSandbox();
+    }
+    
     // Gets all modules taught in a specific programme year
     public List<Module> getModulesForProgrammeYear(String programmeCode, int year) {
         List<Module> modules = new ArrayList<>();
@@ -109,10 +120,10 @@ public class TimetableService {
 
 // Generates reports and analytics about timetable usage
 class ReportService {
-    private DataManager dataManager;
+    private TimetableSource dataManager;
     
-    // Constructor - initializes with data manager
-    public ReportService(DataManager dataManager) {
+    // Constructor - initializes with the live data manager or a what-if sandbox
+    public ReportService(TimetableSource dataManager) {
         this.dataManager = dataManager;
     }
     
@@ -149,21 +160,15 @@ class ReportService {
         // Total hours available per week (5 days × 10 hours)
         final double TOTAL_HOURS_PER_WEEK = 50.0;
         
+        // Sum up all hours each room is booked in a single pass over the entries
+        Map<String, Integer> hoursUsed = new HashMap<>();
+        for (TimetableEntry entry : dataManager.getTimetableEntries()) {
+            hoursUsed.merge(entry.getRoomId(), calculateDuration(entry), Integer::sum);
+        }
+        
         for (Room room : dataManager.getRooms().values()) {
-            double hoursUsed = 0.0;
-            
-            // Sum up all hours the room is booked
-            for (TimetableEntry entry : dataManager.getTimetableEntries()) {
-                if (entry.getRoomId().equals(room.getRoomId())) {
-                    hoursUsed += calculateDuration(
-                        entry.getTimeSlot().getStartTime(),
-                        entry.getTimeSlot().getEndTime()
-                    );
-                }
-            }
-            
             // Calculate percentage
-            double utilizationPercent = (hoursUsed / TOTAL_HOURS_PER_WEEK) * 100.0;
+            double utilizationPercent = (hoursUsed.getOrDefault(room.getRoomId(), 0) / TOTAL_HOURS_PER_WEEK) * 100.0;
             utilization.put(room.getRoomId(), utilizationPercent);
         }
         
@@ -174,21 +179,15 @@ class ReportService {
     public Map<String, Integer> calculateLecturerWorkload() {
         Map<String, Integer> workload = new HashMap<>();
         
+        // Sum up all teaching hours per lecturer in a single pass over the entries
+        Map<String, Integer> hoursTaught = new HashMap<>();
+        for (TimetableEntry entry : dataManager.getTimetableEntries()) {
+            hoursTaught.merge(entry.getLecturerId(), calculateDuration(entry), Integer::sum);
+        }
+        
         for (User user : dataManager.getUsers().values()) {
             if (user.getRole() == UserRole.LECTURER) {
-                int totalHours = 0;
-                
-                // Sum up all teaching hours for this lecturer
-                for (TimetableEntry entry : dataManager.getTimetableEntries()) {
-                    if (entry.getLecturerId().equals(user.getUserId())) {
-                        totalHours += calculateDuration(
-                            entry.getTimeSlot().getStartTime(),
-                            entry.getTimeSlot().getEndTime()
-                        );
-                    }
-                }
-                
-                workload.put(user.getUserId(), totalHours);
+                workload.put(user.getUserId(), hoursTaught.getOrDefault(user.getUserId(), 0));
             }
         }
         
@@ -252,18 +251,8 @@ class ReportService {
         return conflicts;
     }
     
-    // Helper method - calculates duration in hours between two times
-    private int calculateDuration(String startTime, String endTime) {
-        try {
-            String[] startParts = startTime.split(":");
-            String[] endParts = endTime.split(":");
-            
-            int startMinutes = Integer.parseInt(startParts[0]) * 60 + Integer.parseInt(startParts[1]);
-            int endMinutes = Integer.parseInt(endParts[0]) * 60 + Integer.parseInt(endParts[1]);
-            
-            return (endMinutes - startMinutes) / 60;
-        } catch (Exception e) {
-            return 0;
-        }
+    // Helper method - calculates duration of an entry in whole hours
+    private int calculateDuration(TimetableEntry entry) {
+        return entry.getDurationMinutes() / 60;
     }
 }
\ No newline at end of file
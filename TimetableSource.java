@@ -0,0 +1,15 @@
+/**
+ Read-only view of timetable data used by reports and conflict checks.
+ Implemented by DataManager for the live timetable and by TimetableSandbox for what-if changes.
+ */
+package ie.ul.timetable.models;
+
+import java.util.List;
+import java.util.Map;
+
+public interface TimetableSource {
+    List<TimetableEntry> getTimetableEntries();
+    Map<String, User> getUsers();
+    Map<String, Room> getRooms();
+    Map<String, Module> getModules();
+}